@@ -1,8 +1,23 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
 import java.util.PriorityQueue;
 import java.util.Scanner;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class Astar {
 
@@ -16,6 +31,26 @@ public class Astar {
     static final int[] POSSIBLE_X_DIRECTIONS = {0, 0, 1, -1};
     static final int[] POSSIBLE_Y_DIRECTIONS = {1, -1, 0, 0};
 
+    // Run configuration, passed as JVM system properties (e.g. -Dastar.deadlineMs=50)
+    static final long TURN_DEADLINE_MILLIS = Long.getLong("astar.deadlineMs", 0L);
+    static final boolean PRINT_STATISTICS = Boolean.getBoolean("astar.stats");
+    static final boolean USE_ZONE_MASKS = !Boolean.getBoolean("astar.scalarZones");
+    static final String PLANNER_MODE = System.getProperty("astar.mode", "astar");
+    static final long PLAN_CACHE_KILOBYTES = Long.getLong("astar.cacheKb", 0L);
+    static final boolean REUSE_PLANS = Boolean.getBoolean("astar.reusePlans");
+    static final String SEARCH_TABLES = System.getProperty("astar.tables", "heap");
+    static final int GAMES_PER_PROCESS = Integer.getInteger("astar.games", 1);
+
+    // Canonical knowledge encoding: one bit per cell for every kind of perceived object
+    static final String KNOWLEDGE_KINDS = "OUNWPC";
+    static final int CELLS_ON_MAP = (MAX_CELL_INDEX + 1) * (MAX_CELL_INDEX + 1);
+    static final int KNOWLEDGE_WORDS_PER_KIND = (CELLS_ON_MAP + Long.SIZE - 1) / Long.SIZE;
+    // Rough heap footprint of one plan cache entry (key with its bit array, map entry) and of each cached action
+    static final int PLAN_CACHE_ENTRY_BYTES = 280;
+    static final int PLAN_CACHE_ACTION_BYTES = 40;
+    // One search state per cell and ring/coat combination, in the same order as MapState.dangerRows
+    static final int SEARCH_STATES = 4 * CELLS_ON_MAP;
+
     /**
      * Calculates the Manhattan (or "von Neumann") distance between two points.
      * Used for enemy perception zones.
@@ -32,6 +67,19 @@ public class Astar {
         return Math.max(Math.abs(xCurrent - xDestination), Math.abs(yCurrent - yDesignation));
     }
 
+    /** Index of the (x, y, ring, coat) search state in the per-state tables. */
+    static int searchStateIndex(int x, int y, boolean hasRing, boolean hasCoat) {
+        return ((hasRing ? 1 : 0) + (hasCoat ? 2 : 0)) * CELLS_ON_MAP + y * (MAX_CELL_INDEX + 1) + x;
+    }
+
+    /** Creates the per-state tables chosen by -Dastar.tables (heap or direct). */
+    static SearchTables createSearchTables(int states) {
+        if ("direct".equals(SEARCH_TABLES)) {
+            return new DirectSearchTables(states);
+        }
+        return new HeapSearchTables(states);
+    }
+
     /**
      * Represents a single cell on the 13x13 map.
      */
@@ -87,6 +135,10 @@ public class Astar {
             }
             this.hCost = neumannDistance(x, y, xTarget, yTarget);
         }
+        /** Index of this node's state in the per-state search tables. */
+        int stateIndex() {
+            return searchStateIndex(xCoordinate, yCoordinate, isRingEquipped, isCoatEquipped);
+        }
         /** Calculates the total estimated cost (g + h) for this node. */
         int fCost() {
             return gCost + hCost;
@@ -121,6 +173,54 @@ public class Astar {
             return Objects.hash(xCoordinate, yCoordinate, isRingEquipped, isCoatEquipped);
         }
     }
+    /**
+     * Represents a state in the Breadth-First Search space.
+     * A state is defined by coordinates, ring status, and coat status.
+     */
+    static class BFSCell {
+        private int xCoordinate;
+        private int yCoordinate;
+        private boolean isRingEquipped;
+        private boolean isCoatEquipped;
+
+        BFSCell(int x, int y, boolean hasRing, boolean hasCoat) {
+            this.xCoordinate = x;
+            this.yCoordinate = y;
+            this.isRingEquipped = hasRing;
+            this.isCoatEquipped = hasCoat;
+        }
+        /** Decodes a state index of the per-state search tables. */
+        static BFSCell fromStateIndex(int state) {
+            int cell = state % CELLS_ON_MAP;
+            int layer = state / CELLS_ON_MAP;
+            return new BFSCell(cell % (MAX_CELL_INDEX + 1), cell / (MAX_CELL_INDEX + 1),
+                    (layer & 1) != 0, (layer & 2) != 0);
+        }
+        /** Index of this state in the per-state search tables. */
+        int stateIndex() {
+            return searchStateIndex(xCoordinate, yCoordinate, isRingEquipped, isCoatEquipped);
+        }
+
+        /** Checks if two BFS cells represent the same state. */
+        public boolean equals(Object anotherObject) {
+            if (this == anotherObject) {
+                return true;
+            }
+            if (anotherObject == null || getClass() != anotherObject.getClass()) {
+                return false;
+            }
+            BFSCell anotherCell = (BFSCell) anotherObject;
+            if (xCoordinate == anotherCell.xCoordinate && yCoordinate == anotherCell.yCoordinate
+                    && isRingEquipped == anotherCell.isRingEquipped && isCoatEquipped == anotherCell.isCoatEquipped) {
+                return true;
+            }
+            return false;
+        }
+        /** Generates a hash code based on the complete state. */
+        public int hashCode() {
+            return Objects.hash(xCoordinate, yCoordinate, isRingEquipped, isCoatEquipped);
+        }
+    }
     /** Defines the possible types of actions the agent can take. */
     enum TurnTypes {
         MOVEMENT,
@@ -149,14 +249,31 @@ public class Astar {
         private HashSet<Cell> towerLocation = new HashSet<>();
         private HashSet<Cell> pZoneLocation = new HashSet<>();
         private Cell coatLocation = null;
+        /** Danger masks, one per (ring, coat) state: bit y of dangerRows[state][x] is set when
+         cell (x, y) is unsafe. Rebuilt after every map update, so isCellSafe is a single lookup. */
+        private int[][] dangerRows = new int[4][MAX_CELL_INDEX + 1];
+        // Everything above as bits, so a whole knowledge state can be compared and hashed cheaply.
+        private long[] knowledgeBits = new long[KNOWLEDGE_KINDS.length() * KNOWLEDGE_WORDS_PER_KIND];
+        // What the last update taught us that was not known before.
+        private boolean lastUpdateAddedHazards = false;
+        private boolean lastUpdateFoundCoat = false;
         /** Reads new perception data from the interactor and updates enemy locations. */
         public void updateState(Scanner scanner) {
+            lastUpdateAddedHazards = false;
+            lastUpdateFoundCoat = false;
             int count = scanner.nextInt();
             for (int i = 0; i < count; i++) {
                 int x = scanner.nextInt();
                 int y = scanner.nextInt();
                 char enemy = scanner.next().charAt(0);
                 Cell pos = new Cell(x, y);
+                if (rememberKnowledge(x, y, enemy)) {
+                    if (enemy == 'C') {
+                        lastUpdateFoundCoat = true;
+                    } else {
+                        lastUpdateAddedHazards = true;
+                    }
+                }
                 switch (enemy) {
                     case 'O':
                         orcLocation.add(pos);
@@ -180,6 +297,38 @@ public class Astar {
                         break;
                 }
             }
+            if (USE_ZONE_MASKS) {
+                rebuildDangerRows();
+            }
+        }
+        /**
+         * Sets the bit of the perceived object in the canonical knowledge encoding.
+         * Returns true if the object was not known before.
+         */
+        private boolean rememberKnowledge(int x, int y, char kind) {
+            int kindIndex = KNOWLEDGE_KINDS.indexOf(kind);
+            if (kindIndex < 0 || x < MIN_CELL_INDEX || x > MAX_CELL_INDEX
+                    || y < MIN_CELL_INDEX || y > MAX_CELL_INDEX) {
+                return false;
+            }
+            int bit = x * (MAX_CELL_INDEX + 1) + y;
+            int word = kindIndex * KNOWLEDGE_WORDS_PER_KIND + bit / Long.SIZE;
+            long mask = 1L << (bit % Long.SIZE);
+            boolean isNew = (knowledgeBits[word] & mask) == 0;
+            knowledgeBits[word] |= mask;
+            return isNew;
+        }
+        /** Tells whether the last update revealed an enemy or danger cell that was not known before. */
+        public boolean lastUpdateAddedHazards() {
+            return lastUpdateAddedHazards;
+        }
+        /** Tells whether the last update revealed the coat. */
+        public boolean lastUpdateFoundCoat() {
+            return lastUpdateFoundCoat;
+        }
+        /** Returns a copy of the canonical knowledge encoding (same knowledge gives equal arrays). */
+        public long[] getKnowledgeBits() {
+            return knowledgeBits.clone();
         }
         /** Returns the known location of the coat. */
         public Cell getCoatLocation() {
@@ -262,8 +411,96 @@ public class Astar {
             }
             return true;
         }
-        /** The main safety check, combining all individual checks. */
+        /** Index of a (ring, coat) state in the danger masks. */
+        private static int stateIndex(boolean isCoatEquipped, boolean isRingEquipped) {
+            return (isRingEquipped ? 1 : 0) + (isCoatEquipped ? 2 : 0);
+        }
+        /** Bits yFrom..yTo of a row, clipped to the map. */
+        private static int rowSpan(int yFrom, int yTo) {
+            int from = Math.max(yFrom, MIN_CELL_INDEX);
+            int to = Math.min(yTo, MAX_CELL_INDEX);
+            if (from > to) {
+                return 0;
+            }
+            return ((1 << (to - from + 1)) - 1) << from;
+        }
+        /** Marks the given bits of row x as dangerous, rows outside the map are ignored. */
+        private static void markRow(int[] rows, int x, int bits) {
+            if (x >= MIN_CELL_INDEX && x <= MAX_CELL_INDEX) {
+                rows[x] |= bits;
+            }
+        }
+        /** Marks every cell with Moore distance <= radius, one row span at a time. */
+        private static void markMoore(int[] rows, int xCenter, int yCenter, int radius) {
+            int span = rowSpan(yCenter - radius, yCenter + radius);
+            for (int dx = -radius; dx <= radius; dx++) {
+                markRow(rows, xCenter + dx, span);
+            }
+        }
+        /** Marks every cell with von Neumann distance <= radius, the span shrinks away from the center row. */
+        private static void markNeumann(int[] rows, int xCenter, int yCenter, int radius) {
+            for (int dx = -radius; dx <= radius; dx++) {
+                int halfWidth = radius - Math.abs(dx);
+                markRow(rows, xCenter + dx, rowSpan(yCenter - halfWidth, yCenter + halfWidth));
+            }
+        }
+        /** Marks the four "ears": the cells at exactly the given distance along both axes. */
+        private static void markEars(int[] rows, int xCenter, int yCenter, int distance) {
+            markRow(rows, xCenter - distance, rowSpan(yCenter, yCenter));
+            markRow(rows, xCenter + distance, rowSpan(yCenter, yCenter));
+            markRow(rows, xCenter, rowSpan(yCenter - distance, yCenter - distance)
+                    | rowSpan(yCenter + distance, yCenter + distance));
+        }
+        /**
+         * Rebuilds the danger masks of all four (ring, coat) states from the known enemies.
+         * The zones are the same as in isOrcFree, isUrukFree, isTowerFree and isNazgulFree.
+         */
+        void rebuildDangerRows() {
+            for (int state = 0; state < dangerRows.length; state++) {
+                boolean isRingEquipped = (state & 1) != 0;
+                boolean isCoatEquipped = (state & 2) != 0;
+                int[] rows = dangerRows[state];
+                Arrays.fill(rows, 0);
+                for (Cell orc : orcLocation) {
+                    markNeumann(rows, orc.xCoordinate, orc.yCoordinate, isCoatEquipped || isRingEquipped ? 0 : 1);
+                }
+                for (Cell uruk : urukLocation) {
+                    markNeumann(rows, uruk.xCoordinate, uruk.yCoordinate, isCoatEquipped || isRingEquipped ? 1 : 2);
+                }
+                for (Cell tower : towerLocation) {
+                    markMoore(rows, tower.xCoordinate, tower.yCoordinate, 2);
+                    if (isRingEquipped) {
+                        markEars(rows, tower.xCoordinate, tower.yCoordinate, TOWER_AND_NAZGUL_MAXIMUM_P_ZONE);
+                    }
+                }
+                for (Cell nazgul : nazgulLocation) {
+                    if (isCoatEquipped) {
+                        markMoore(rows, nazgul.xCoordinate, nazgul.yCoordinate, 1);
+                    } else if (isRingEquipped) {
+                        markMoore(rows, nazgul.xCoordinate, nazgul.yCoordinate, 2);
+                        markEars(rows, nazgul.xCoordinate, nazgul.yCoordinate, TOWER_AND_NAZGUL_MAXIMUM_P_ZONE);
+                    } else {
+                        markMoore(rows, nazgul.xCoordinate, nazgul.yCoordinate, 1);
+                        markEars(rows, nazgul.xCoordinate, nazgul.yCoordinate, 2);
+                    }
+                }
+                for (Cell pZone : pZoneLocation) {
+                    markRow(rows, pZone.xCoordinate, rowSpan(pZone.yCoordinate, pZone.yCoordinate));
+                }
+            }
+        }
+        /** The main safety check: a lookup in the danger masks, or all individual checks as a fallback. */
         public boolean isCellSafe(int x, int y, boolean isCoatEquipped, boolean isRingEquipped) {
+            if (x < MIN_CELL_INDEX || x > MAX_CELL_INDEX || y < MIN_CELL_INDEX || y > MAX_CELL_INDEX) {
+                return false;
+            }
+            if (USE_ZONE_MASKS) {
+                return (dangerRows[stateIndex(isCoatEquipped, isRingEquipped)][x] & (1 << y)) == 0;
+            }
+            return isCellSafeByRules(x, y, isCoatEquipped, isRingEquipped);
+        }
+        /** The scalar safety check, combining all individual checks cell by cell. */
+        boolean isCellSafeByRules(int x, int y, boolean isCoatEquipped, boolean isRingEquipped) {
             if (x < MIN_CELL_INDEX || x > MAX_CELL_INDEX || y < MIN_CELL_INDEX || y > MAX_CELL_INDEX) {
                 return false;
             }
@@ -280,39 +517,261 @@ public class Astar {
             return false;
         }
     }
+    /**
+     * Collects per-game counters about the planner. Printed to stderr at the end of the game
+     * (only with -Dastar.stats=true) so that the interactor protocol on stdout is untouched.
+     */
+    static class RunStatistics {
+        private int turns = 0;
+        private int plannerCalls = 0;
+        private int reusedSteps = 0;
+        private int deadlineMisses = 0;
+        private long expandedCells = 0;
+        private long openListPushes = 0;
+        private long planningNanos = 0;
+        private long maxTurnNanos = 0;
+        private Planner planner;
+        RunStatistics(Planner planner) {
+            this.planner = planner;
+        }
+        /** Records one call of the planner. */
+        public void recordPlan(Planner solver, long elapsedNanos) {
+            plannerCalls++;
+            expandedCells += solver.getLastExpandedCells();
+            openListPushes += solver.getLastOpenListPushes();
+            planningNanos += elapsedNanos;
+            maxTurnNanos = Math.max(maxTurnNanos, elapsedNanos);
+            if (!solver.isLastActionOptimal()) {
+                deadlineMisses++;
+            }
+        }
+        /** Records one action taken from the committed path without calling the planner. */
+        public void recordReusedStep() {
+            reusedSteps++;
+        }
+        /** Records one command sent to the interactor. */
+        public void recordTurn() {
+            turns++;
+        }
+        /** Writes all counters as a single "stats key=value ..." line to stderr. */
+        public void report() {
+            if (!PRINT_STATISTICS) {
+                return;
+            }
+            System.err.println("stats turns=" + turns
+                    + " planner_calls=" + plannerCalls
+                    + " reused_steps=" + reusedSteps
+                    + " deadline_misses=" + deadlineMisses
+                    + " optimal=" + (deadlineMisses == 0)
+                    + " expanded=" + expandedCells
+                    + " pushes=" + openListPushes
+                    + " planning_ms=" + planningNanos / 1000000.0
+                    + " max_turn_ms=" + maxTurnNanos / 1000000.0
+                    + planner.getStatistics());
+        }
+    }
+    /** Common contract of all pathfinding engines the Journey can be driven by. */
+    interface Planner {
+        /** Returns all actions of a path from start to target, or null if there is none. */
+        ArrayList<Action> findPath(Cell start, boolean startHasRing, boolean startHasCoat, Cell target, MapState map);
+        /** Returns the first action of a path from start to target, or null if there is none. */
+        default Action findNextAction(Cell start, boolean startHasRing, boolean startHasCoat,
+                                      Cell target, MapState map) {
+            ArrayList<Action> path = findPath(start, startHasRing, startHasCoat, target, map);
+            return path == null ? null : path.get(0);
+        }
+        /** Tells whether the last returned path was proven to be optimal. */
+        boolean isLastActionOptimal();
+        /** Returns how many cells the last search took out of the queue. */
+        int getLastExpandedCells();
+        /** Returns how many cells the last search put into its queue. */
+        int getLastOpenListPushes();
+        /** Short engine name used in the statistics. */
+        String getName();
+        /** Extra " key=value" pairs for the statistics line, empty by default. */
+        default String getStatistics() {
+            return "";
+        }
+    }
+    /**
+     * Flat per-state tables of a search: the best known cost and the parent state of every
+     * search state. A solver allocates them once and clears them before each search, so the
+     * search itself allocates no map entries or boxed costs.
+     */
+    interface SearchTables {
+        int NO_PARENT = -1;
+        /** Resets every cost to INFINITE_DISTANCE and every parent to NO_PARENT. */
+        void clear();
+        int getCost(int state);
+        void setCost(int state, int cost);
+        int getParent(int state);
+        void setParent(int state, int parent);
+    }
+    /** On-heap backend: two int arrays, reset with Arrays.fill. */
+    static class HeapSearchTables implements SearchTables {
+        private final int[] costs;
+        private final int[] parents;
+        HeapSearchTables(int states) {
+            this.costs = new int[states];
+            this.parents = new int[states];
+            clear();
+        }
+        public void clear() {
+            Arrays.fill(costs, INFINITE_DISTANCE);
+            Arrays.fill(parents, NO_PARENT);
+        }
+        public int getCost(int state) {
+            return costs[state];
+        }
+        public void setCost(int state, int cost) {
+            costs[state] = cost;
+        }
+        public int getParent(int state) {
+            return parents[state];
+        }
+        public void setParent(int state, int parent) {
+            parents[state] = parent;
+        }
+    }
+    /**
+     * Off-heap backend: two direct buffers outside the garbage-collected heap, so the collector
+     * never copies or scans them. They are reset by bulk copies of a small pre-filled chunk.
+     */
+    static class DirectSearchTables implements SearchTables {
+        private static final int FILL_CHUNK_INTS = 4096;
+        private final IntBuffer costs;
+        private final IntBuffer parents;
+        private final IntBuffer infiniteChunk;
+        private final IntBuffer noParentChunk;
+        DirectSearchTables(int states) {
+            this.costs = allocate(states);
+            this.parents = allocate(states);
+            int chunk = Math.min(states, FILL_CHUNK_INTS);
+            this.infiniteChunk = allocate(chunk);
+            this.noParentChunk = allocate(chunk);
+            for (int i = 0; i < chunk; i++) {
+                infiniteChunk.put(i, INFINITE_DISTANCE);
+                noParentChunk.put(i, NO_PARENT);
+            }
+            clear();
+        }
+        private static IntBuffer allocate(int ints) {
+            return ByteBuffer.allocateDirect(ints * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
+        /** Fills the table chunk by chunk; buffers of the same byte order are copied as raw memory. */
+        private static void fill(IntBuffer table, IntBuffer chunk) {
+            table.clear();
+            while (table.hasRemaining()) {
+                IntBuffer source = chunk.duplicate();
+                source.limit(Math.min(source.capacity(), table.remaining()));
+                table.put(source);
+            }
+        }
+        public void clear() {
+            fill(costs, infiniteChunk);
+            fill(parents, noParentChunk);
+        }
+        public int getCost(int state) {
+            return costs.get(state);
+        }
+        public void setCost(int state, int cost) {
+            costs.put(state, cost);
+        }
+        public int getParent(int state) {
+            return parents.get(state);
+        }
+        public void setParent(int state, int parent) {
+            parents.put(state, parent);
+        }
+    }
     /** Implements the A* pathfinding algorithm. */
-    static class AStarSolver {
+    static class AStarSolver implements Planner {
         private int xTargetCoordinate;
         private int yTargetCoordinate;
-        /** Finds the optimal path and returns the first action to take. */
-        public Action findNextAction(Cell start, boolean startHasRing,
-                                     boolean startHasCoat, Cell target, MapState map) {
+        // Per-turn time budget in nanoseconds, 0 means "search until the optimal path is found"
+        private long deadlineNanos;
+        /** The generated cell with the lowest hCost, used as a fallback when the deadline is hit.
+         Only cells with the starting ring state count: ring zones reach beyond the perception
+         radius, so an unplanned toggle is the riskiest thing a partial plan can do. The coat
+         state must match as well: the coat cannot be taken off, and the zones it changes can
+         close the way back, so a partial plan that picks it up may leave the target unreachable. */
+        private AStarCell bestFrontierCell;
+        private boolean startRingState;
+        private boolean startCoatState;
+        private boolean lastActionOptimal = true;
+        private int lastExpandedCells = 0;
+        private int lastOpenListPushes = 0;
+        // Best known gCost of every state, allocated once and cleared before each search
+        private final SearchTables searchTables = createSearchTables(SEARCH_STATES);
+        AStarSolver(long deadlineMillis) {
+            this.deadlineNanos = deadlineMillis * 1000000L;
+        }
+        public boolean isLastActionOptimal() {
+            return lastActionOptimal;
+        }
+        public int getLastExpandedCells() {
+            return lastExpandedCells;
+        }
+        public int getLastOpenListPushes() {
+            return lastOpenListPushes;
+        }
+        public String getName() {
+            return "astar";
+        }
+        /**
+         * Finds the optimal path and returns its actions.
+         * If a deadline is set and runs out, the path to the most promising discovered cell
+         * is returned instead and marked as not optimal.
+         */
+        public ArrayList<Action> findPath(Cell start, boolean startHasRing,
+                                          boolean startHasCoat, Cell target, MapState map) {
+            long searchStart = System.nanoTime();
             xTargetCoordinate = target.xCoordinate;
             yTargetCoordinate = target.yCoordinate;
+            bestFrontierCell = null;
+            startRingState = startHasRing;
+            startCoatState = startHasCoat;
+            lastActionOptimal = true;
+            lastExpandedCells = 0;
+            lastOpenListPushes = 0;
             AStarCell startCell = new AStarCell(start.xCoordinate, start.yCoordinate,
                     startHasRing, startHasCoat, null, xTargetCoordinate, yTargetCoordinate);
             /** The "cellsToVisit" implemented as a Priority Queue. It automatically keeps the cell
              with the lowest fCost at the front */
             PriorityQueue<AStarCell> cellsToVisit = new PriorityQueue<>();
-            // The "gCost Map" stores the cost of the cheapest path from the start to a given cell
-            HashMap<AStarCell, Integer> gCostMap = new HashMap<>();
+            // The search tables store the cost of the cheapest path from the start to a given state
+            searchTables.clear();
             cellsToVisit.add(startCell);
-            gCostMap.put(startCell, 0);
+            searchTables.setCost(startCell.stateIndex(), 0);
             // Main A* loop: continues as long as there are discovered cells to evaluate.
             while (!cellsToVisit.isEmpty()) {
                 AStarCell currentCell = cellsToVisit.poll();
                 // Goal check: if we've reached the target, reconstruct the path.
                 if (currentCell.xCoordinate == xTargetCoordinate && currentCell.yCoordinate == yTargetCoordinate) {
-                    return reconstructAction(currentCell);
+                    return reconstructPath(currentCell);
                 }
+                // Cancelled by the portfolio: another engine has already answered.
+                if (Thread.currentThread().isInterrupted()) {
+                    lastActionOptimal = false;
+                    return null;
+                }
+                /** Out of time: fall back to the best cell found so far. Any discovered cell is
+                 reachable through safe cells only, so the first step towards it is safe too.
+                 Without such a cell the search goes on past the deadline: an answer that only
+                 toggles the ring could be a wrong "no path" or a step into a hidden zone. */
+                if (deadlineNanos > 0 && bestFrontierCell != null
+                        && System.nanoTime() - searchStart >= deadlineNanos) {
+                    lastActionOptimal = false;
+                    return reconstructPath(bestFrontierCell);
+                }
+                lastExpandedCells++;
                 // Explore all valid neighbors of the current cell.
-                addNeighbors(currentCell, cellsToVisit, gCostMap, map);
+                addNeighbors(currentCell, cellsToVisit, map);
             }
             return null; // No path found.
         }
         /** Generates and processes all valid neighbors for the current node. */
-        private void addNeighbors(AStarCell currentCell, PriorityQueue<AStarCell> cellsToVisit,
-                                  HashMap<AStarCell, Integer> gCostMap, MapState map) {
+        private void addNeighbors(AStarCell currentCell, PriorityQueue<AStarCell> cellsToVisit, MapState map) {
             // Explore neighbors in 4 directions + 1 ring toggle action.
             for (int i = 0; i < DIRECTIONS_WITH_RING_TOGGLE; i++) {
                 int currentXCoordinate = currentCell.xCoordinate;
@@ -341,37 +800,424 @@ public class Astar {
                 int newGCost = currentCell.gCost + 1;
                 /** This is the core of A*'s optimality. We only consider this new path to the
                  neighbor if it's cheaper than any previously found path to the same state. */
-                if (newGCost < gCostMap.getOrDefault(neighbor, INFINITE_DISTANCE)) {
-                    gCostMap.put(neighbor, newGCost);
+                if (newGCost < searchTables.getCost(neighbor.stateIndex())) {
+                    searchTables.setCost(neighbor.stateIndex(), newGCost);
                     cellsToVisit.add(neighbor);
+                    lastOpenListPushes++;
+                    if (neighbor.isRingEquipped == startRingState && neighbor.isCoatEquipped == startCoatState
+                            && isBetterFallback(neighbor, bestFrontierCell)) {
+                        bestFrontierCell = neighbor;
+                    }
                 }
             }
         }
-        /** Go back from the goal node to find the first step of the path. */
-        private Action reconstructAction(AStarCell target) {
+        /** A fallback cell is better when it is closer to the target, or as close but cheaper to reach. */
+        private static boolean isBetterFallback(AStarCell candidate, AStarCell best) {
+            return best == null || candidate.hCost < best.hCost
+                    || (candidate.hCost == best.hCost && candidate.gCost < best.gCost);
+        }
+        /** Go back from the goal node to the start and collect the actions of the path. */
+        private ArrayList<Action> reconstructPath(AStarCell target) {
             AStarCell targetCell = target;
             if (targetCell.parent == null) {
                 return null;
             }
-            // Traverse back up the path until we find the node right after the start.
-            while (targetCell.parent != null && targetCell.parent.parent != null) {
+            ArrayList<Action> path = new ArrayList<>();
+            while (targetCell.parent != null) {
+                // Determine if the action was a move or a ring toggle.
+                TurnTypes type = TurnTypes.RINGEQUIPMENT;
+                if (targetCell.xCoordinate != targetCell.parent.xCoordinate
+                        || targetCell.yCoordinate != targetCell.parent.yCoordinate) {
+                    type = TurnTypes.MOVEMENT;
+                }
+                path.add(new Action(type, targetCell.xCoordinate, targetCell.yCoordinate,
+                        targetCell.isRingEquipped, targetCell.isCoatEquipped));
                 targetCell = targetCell.parent;
             }
-            // Determine if the first action was a move or a ring toggle.
-            TurnTypes type = TurnTypes.RINGEQUIPMENT;
-            if (targetCell.xCoordinate != targetCell.parent.xCoordinate
-                    || targetCell.yCoordinate != targetCell.parent.yCoordinate) {
-                type = TurnTypes.MOVEMENT;
+            Collections.reverse(path);
+            return path;
+        }
+    }
+    /** Implements the Breadth-First Search (BFS) pathfinding algorithm, same as in Backtracking.java. */
+    static class BFSSolver implements Planner {
+        private boolean lastActionOptimal = true;
+        private int lastExpandedCells = 0;
+        private int lastOpenListPushes = 0;
+        // Distance and predecessor of every state, allocated once and cleared before each search
+        private final SearchTables searchTables = createSearchTables(SEARCH_STATES);
+        public boolean isLastActionOptimal() {
+            return lastActionOptimal;
+        }
+        public int getLastExpandedCells() {
+            return lastExpandedCells;
+        }
+        public int getLastOpenListPushes() {
+            return lastOpenListPushes;
+        }
+        public String getName() {
+            return "bfs";
+        }
+        /**
+         * Finds the shortest path (in number of steps) and returns its actions.
+         */
+        public ArrayList<Action> findPath(Cell start, boolean startHasRing,
+                                          boolean startHasCoat, Cell target, MapState map) {
+            lastActionOptimal = true;
+            lastExpandedCells = 0;
+            lastOpenListPushes = 0;
+            // A queue for cells to visit, following the FIFO principle of BFS.
+            ArrayDeque<BFSCell> cellsToVisit = new ArrayDeque<>();
+            /** The parent table stores the path by pointing every state to the state that came
+             before it; a finite cost marks states already visited or in the queue. */
+            searchTables.clear();
+
+            BFSCell startCell = new BFSCell(start.xCoordinate, start.yCoordinate, startHasRing, startHasCoat);
+            int startState = startCell.stateIndex();
+            cellsToVisit.add(startCell);
+            searchTables.setCost(startState, 0);
+
+            while (!cellsToVisit.isEmpty()) {
+                BFSCell currentCell = cellsToVisit.poll();
+
+                // Goal check: if we've reached the target, reconstruct the path.
+                if (currentCell.xCoordinate == target.xCoordinate && currentCell.yCoordinate == target.yCoordinate) {
+                    return reconstructPath(currentCell.stateIndex(), startState);
+                }
+                // Cancelled by the portfolio: another engine has already answered.
+                if (Thread.currentThread().isInterrupted()) {
+                    lastActionOptimal = false;
+                    return null;
+                }
+                lastExpandedCells++;
+                int currentState = currentCell.stateIndex();
+
+                // Explore neighbors in 4 directions + 1 ring toggle action.
+                for (int i = 0; i < DIRECTIONS_WITH_RING_TOGGLE; i++) {
+                    int currentXCoordinate = currentCell.xCoordinate;
+                    int currentYCoordinate = currentCell.yCoordinate;
+                    boolean ifRingCurrentlyEquipped = currentCell.isRingEquipped;
+                    boolean ifCoatCurrentlyEquipped = currentCell.isCoatEquipped;
+
+                    if (i < NUMBER_OF_DIRECTIONS) { // Move action
+                        currentXCoordinate += POSSIBLE_X_DIRECTIONS[i];
+                        currentYCoordinate += POSSIBLE_Y_DIRECTIONS[i];
+                        Cell coatLocation = map.getCoatLocation();
+                        if (!ifCoatCurrentlyEquipped && coatLocation != null && currentXCoordinate
+                                == coatLocation.xCoordinate && currentYCoordinate == coatLocation.yCoordinate) {
+                            ifCoatCurrentlyEquipped = true;
+                        }
+                    } else { // Ring toggle action
+                        ifRingCurrentlyEquipped = !currentCell.isRingEquipped;
+                    }
+
+                    if (map.isCellSafe(currentXCoordinate, currentYCoordinate,
+                            ifCoatCurrentlyEquipped, ifRingCurrentlyEquipped)) {
+                        BFSCell neighbor = new BFSCell(currentXCoordinate, currentYCoordinate,
+                                ifRingCurrentlyEquipped, ifCoatCurrentlyEquipped);
+                        int neighborState = neighbor.stateIndex();
+                        if (searchTables.getCost(neighborState) == INFINITE_DISTANCE) {
+                            searchTables.setCost(neighborState, searchTables.getCost(currentState) + 1);
+                            searchTables.setParent(neighborState, currentState); // Record the path
+                            cellsToVisit.add(neighbor); // Add to the end of the queue
+                            lastOpenListPushes++;
+                        }
+                    }
+                }
+            }
+            return null; // No path found.
+        }
+        /**
+         * Backtracks from the goal to the start and collects the actions of the path.
+         */
+        private ArrayList<Action> reconstructPath(int targetState, int startState) {
+            if (searchTables.getParent(targetState) == SearchTables.NO_PARENT) {
+                return null;
+            }
+            BFSCell targetCell = BFSCell.fromStateIndex(targetState);
+            ArrayList<Action> path = new ArrayList<>();
+            while (targetState != startState) {
+                targetState = searchTables.getParent(targetState);
+                BFSCell previousCell = BFSCell.fromStateIndex(targetState);
+                // Determine if the action was a move or a ring toggle.
+                TurnTypes type = TurnTypes.RINGEQUIPMENT;
+                if (targetCell.xCoordinate != previousCell.xCoordinate
+                        || targetCell.yCoordinate != previousCell.yCoordinate) {
+                    type = TurnTypes.MOVEMENT;
+                }
+                path.add(new Action(type, targetCell.xCoordinate, targetCell.yCoordinate,
+                        targetCell.isRingEquipped, targetCell.isCoatEquipped));
+                targetCell = previousCell;
+            }
+            Collections.reverse(path);
+            return path;
+        }
+    }
+    /**
+     * Races several engines on the same turn, each on its own thread. The map is only read
+     * during the race, so all engines share it. The first engine to answer wins, the others
+     * are interrupted and stop at their next expansion; the method returns only after every
+     * engine has stopped, so the Journey may update the map right away.
+     * A loser's time is how long it had run when it stopped, so it and the winner's lead over it
+     * are lower bounds: the loser would have needed at least that long.
+     */
+    static class PortfolioSolver implements Planner {
+        private Planner[] engines;
+        // One single-thread executor per engine, so an engine never runs two searches at once.
+        private ExecutorService[] executors;
+        private int[] wins;
+        private long[] winNanos;
+        // Per engine: total run time on lost turns, and total lead over the fastest loser on won turns
+        private long[] lossNanos;
+        private long[] marginNanos;
+        // When each engine's current search stopped and whether its answer was optimal, written by its own thread
+        private long[] finishNanos;
+        private boolean[] answerOptimal;
+        private Planner lastWinner = null;
+        PortfolioSolver(Planner... engines) {
+            this.engines = engines;
+            this.executors = new ExecutorService[engines.length];
+            this.wins = new int[engines.length];
+            this.winNanos = new long[engines.length];
+            this.lossNanos = new long[engines.length];
+            this.marginNanos = new long[engines.length];
+            this.finishNanos = new long[engines.length];
+            this.answerOptimal = new boolean[engines.length];
+            for (int i = 0; i < engines.length; i++) {
+                executors[i] = Executors.newSingleThreadExecutor(runnable -> {
+                    Thread thread = new Thread(runnable);
+                    thread.setDaemon(true); // do not keep the JVM alive after the game ends
+                    return thread;
+                });
+            }
+        }
+        public boolean isLastActionOptimal() {
+            return lastWinner == null || lastWinner.isLastActionOptimal();
+        }
+        public int getLastExpandedCells() {
+            return lastWinner == null ? 0 : lastWinner.getLastExpandedCells();
+        }
+        public int getLastOpenListPushes() {
+            return lastWinner == null ? 0 : lastWinner.getLastOpenListPushes();
+        }
+        public String getName() {
+            return "portfolio";
+        }
+        /**
+         * Reports for each engine how many turns it won, its total time on the turns it won, its
+         * time until it stopped on the turns it lost, and by how much it beat the others at least.
+         * Turns where no engine found an optimal answer have no winner and are not counted.
+         */
+        public String getStatistics() {
+            StringBuilder line = new StringBuilder();
+            for (int i = 0; i < engines.length; i++) {
+                line.append(" wins_").append(engines[i].getName()).append('=').append(wins[i]);
+                line.append(" win_ms_").append(engines[i].getName()).append('=').append(winNanos[i] / 1000000.0);
+                line.append(" loss_ms_").append(engines[i].getName()).append('=').append(lossNanos[i] / 1000000.0);
+                line.append(" margin_ms_").append(engines[i].getName()).append('=').append(marginNanos[i] / 1000000.0);
+            }
+            return line.toString();
+        }
+        /**
+         * Runs all engines at once and returns the first optimal answer. A non-optimal answer
+         * (e.g. from a missed deadline) is only used when every engine has finished without one.
+         */
+        public ArrayList<Action> findPath(Cell start, boolean startHasRing,
+                                          boolean startHasCoat, Cell target, MapState map) {
+            long raceStart = System.nanoTime();
+            ArrayBlockingQueue<Integer> finishedEngines = new ArrayBlockingQueue<>(engines.length);
+            ArrayList<Future<ArrayList<Action>>> answers = new ArrayList<>();
+            for (int i = 0; i < engines.length; i++) {
+                final Planner engine = engines[i];
+                final int engineIndex = i;
+                finishNanos[i] = 0;
+                answerOptimal[i] = false;
+                answers.add(executors[i].submit(() -> {
+                    try {
+                        ArrayList<Action> path = engine.findPath(start, startHasRing, startHasCoat, target, map);
+                        answerOptimal[engineIndex] = engine.isLastActionOptimal();
+                        return path;
+                    } finally {
+                        finishNanos[engineIndex] = System.nanoTime();
+                        finishedEngines.add(engineIndex);
+                    }
+                }));
+            }
+            try {
+                int winner = finishedEngines.take();
+                int firstFinished = winner;
+                for (int finished = 1; !answerOptimal[winner] && finished < engines.length; finished++) {
+                    winner = finishedEngines.take();
+                }
+                if (!answerOptimal[winner]) {
+                    winner = firstFinished;
+                }
+                for (int i = 0; i < answers.size(); i++) {
+                    if (i != winner) {
+                        answers.get(i).cancel(true);
+                    }
+                }
+                long cancelTime = System.nanoTime();
+                /** Wait until the losers notice the interruption and leave the map alone: an empty
+                 task on an engine's own executor can only run after its search has stopped. */
+                for (ExecutorService executor : executors) {
+                    executor.submit(() -> { }).get();
+                }
+                lastWinner = engines[winner];
+                if (!answerOptimal[winner]) {
+                    return answers.get(winner).get();
+                }
+                long elapsed = finishNanos[winner] - raceStart;
+                long fastestLoser = Long.MAX_VALUE;
+                for (int i = 0; i < engines.length; i++) {
+                    if (i != winner) {
+                        // An engine cancelled before its thread picked the search up never ran at all
+                        long loserElapsed = (finishNanos[i] == 0 ? cancelTime : finishNanos[i]) - raceStart;
+                        lossNanos[i] += loserElapsed;
+                        fastestLoser = Math.min(fastestLoser, loserElapsed);
+                    }
+                }
+                wins[winner]++;
+                winNanos[winner] += elapsed;
+                if (fastestLoser != Long.MAX_VALUE) {
+                    marginNanos[winner] += Math.max(0, fastestLoser - elapsed);
+                }
+                return answers.get(winner).get();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new IllegalStateException("Portfolio search failed", e);
+            }
+        }
+    }
+    /** Everything a planner's answer depends on: the known map, the agent state and the target. */
+    static class PlanKey {
+        private long[] knowledgeBits;
+        private int xStart;
+        private int yStart;
+        private boolean hasRing;
+        private boolean hasCoat;
+        private int xTarget;
+        private int yTarget;
+        private int hash;
+        PlanKey(long[] knowledgeBits, Cell start, boolean hasRing, boolean hasCoat, Cell target) {
+            this.knowledgeBits = knowledgeBits;
+            this.xStart = start.xCoordinate;
+            this.yStart = start.yCoordinate;
+            this.hasRing = hasRing;
+            this.hasCoat = hasCoat;
+            this.xTarget = target.xCoordinate;
+            this.yTarget = target.yCoordinate;
+            this.hash = 31 * Arrays.hashCode(knowledgeBits)
+                    + Objects.hash(xStart, yStart, hasRing, hasCoat, xTarget, yTarget);
+        }
+        /** Checks if two keys describe exactly the same planning problem. */
+        public boolean equals(Object anotherObject) {
+            if (this == anotherObject) {
+                return true;
             }
-            return new Action(type, targetCell.xCoordinate, targetCell.yCoordinate,
-                    targetCell.isRingEquipped, targetCell.isCoatEquipped);
+            if (anotherObject == null || getClass() != anotherObject.getClass()) {
+                return false;
+            }
+            PlanKey anotherKey = (PlanKey) anotherObject;
+            return hash == anotherKey.hash && xStart == anotherKey.xStart && yStart == anotherKey.yStart
+                    && hasRing == anotherKey.hasRing && hasCoat == anotherKey.hasCoat
+                    && xTarget == anotherKey.xTarget && yTarget == anotherKey.yTarget
+                    && Arrays.equals(knowledgeBits, anotherKey.knowledgeBits);
+        }
+        /** Returns the hash computed once in the constructor. */
+        public int hashCode() {
+            return hash;
+        }
+    }
+    /** A bounded map of solved planning problems that drops the least recently used ones when full. */
+    static class PlanCache {
+        // Access order, so iteration starts at the least recently used entry
+        private LinkedHashMap<PlanKey, ArrayList<Action>> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long maxBytes;
+        private long usedBytes = 0;
+        private long hits = 0;
+        private long misses = 0;
+        PlanCache(long maxKilobytes) {
+            this.maxBytes = maxKilobytes * 1024;
+        }
+        /** Returns the cached path of a planning problem (marking it as recently used), or null. */
+        public ArrayList<Action> get(PlanKey key) {
+            return entries.get(key);
+        }
+        public int size() {
+            return entries.size();
+        }
+        /** Estimated heap footprint of one entry. */
+        private static long entryBytes(ArrayList<Action> path) {
+            return PLAN_CACHE_ENTRY_BYTES + (long) PLAN_CACHE_ACTION_BYTES * path.size();
+        }
+        /** Stores a path and evicts the least recently used entries until the memory cap holds again. */
+        public void store(PlanKey key, ArrayList<Action> path) {
+            ArrayList<Action> replaced = entries.put(key, path);
+            if (replaced != null) {
+                usedBytes -= entryBytes(replaced);
+            }
+            usedBytes += entryBytes(path);
+            Iterator<Map.Entry<PlanKey, ArrayList<Action>>> eldest = entries.entrySet().iterator();
+            while (usedBytes > maxBytes && eldest.hasNext()) {
+                usedBytes -= entryBytes(eldest.next().getValue());
+                eldest.remove();
+            }
+        }
+    }
+    /**
+     * Answers from a plan cache when the same planning problem was already solved in this process
+     * and asks the wrapped planner otherwise. Only answers proven optimal are stored.
+     */
+    static class CachingPlanner implements Planner {
+        private Planner planner;
+        private PlanCache cache;
+        private boolean lastAnswerCached = false;
+        CachingPlanner(Planner planner, PlanCache cache) {
+            this.planner = planner;
+            this.cache = cache;
+        }
+        public boolean isLastActionOptimal() {
+            return lastAnswerCached || planner.isLastActionOptimal();
+        }
+        public int getLastExpandedCells() {
+            return lastAnswerCached ? 0 : planner.getLastExpandedCells();
+        }
+        public int getLastOpenListPushes() {
+            return lastAnswerCached ? 0 : planner.getLastOpenListPushes();
+        }
+        public String getName() {
+            return planner.getName();
+        }
+        public String getStatistics() {
+            return " cache_hits=" + cache.hits + " cache_misses=" + cache.misses
+                    + " cache_entries=" + cache.size() + " cache_kb=" + cache.usedBytes / 1024
+                    + planner.getStatistics();
+        }
+        /** Looks the problem up in the cache before running the wrapped planner. Callers must not modify the path. */
+        public ArrayList<Action> findPath(Cell start, boolean startHasRing,
+                                          boolean startHasCoat, Cell target, MapState map) {
+            PlanKey key = new PlanKey(map.getKnowledgeBits(), start, startHasRing, startHasCoat, target);
+            ArrayList<Action> cachedPath = cache.get(key);
+            lastAnswerCached = cachedPath != null;
+            if (lastAnswerCached) {
+                cache.hits++;
+                return cachedPath;
+            }
+            cache.misses++;
+            ArrayList<Action> path = planner.findPath(start, startHasRing, startHasCoat, target, map);
+            if (path != null && planner.isLastActionOptimal()) {
+                cache.store(key, path);
+            }
+            return path;
         }
     }
     /** The main "conductor" class that directs the game loop. */
     static class Journey {
-        private Scanner scanner = new Scanner(System.in);
+        // Shared by every game played in this process, so repeated openings are solved only once.
+        private static final PlanCache SHARED_PLAN_CACHE = new PlanCache(PLAN_CACHE_KILOBYTES);
+        private Scanner scanner;
         private MapState map = new MapState();
-        private AStarSolver solver = new AStarSolver();
+        private Planner solver;
+        private RunStatistics statistics;
         private int currentX = 0;
         private int currentY = 0;
         private int moveCount = 0;
@@ -382,18 +1228,57 @@ public class Astar {
         private int coordinateYOfGollum = -1;
         private int coordinateXOfMount = -1;
         private int coordinateYOfMount = -1;
-        /** Initializes the game by reading the start state. */
-        public void startJourney() {
+        // The rest of the last optimal path and the target it leads to.
+        private ArrayDeque<Action> plannedPath = new ArrayDeque<>();
+        private Cell plannedTarget = null;
+        private boolean gameOver = false;
+        /** Sets up one game. The input and the planner may be shared with the other games of the process. */
+        Journey(Scanner scanner, Planner solver) {
+            this.scanner = scanner;
+            this.solver = solver;
+            this.statistics = new RunStatistics(solver);
+        }
+        /**
+         * Picks the pathfinding engine from -Dastar.mode (astar, bfs or portfolio) and puts the
+         * plan cache in front of it if -Dastar.cacheKb is set. The cache only pays off when one
+         * process plays several games (-Dastar.games); the tester starts a new process for every game.
+         */
+        private static Planner createPlanner() {
+            Planner engine;
+            switch (PLANNER_MODE) {
+                case "bfs":
+                    engine = new BFSSolver();
+                    break;
+                case "portfolio":
+                    engine = new PortfolioSolver(new AStarSolver(TURN_DEADLINE_MILLIS), new BFSSolver());
+                    break;
+                default:
+                    engine = new AStarSolver(TURN_DEADLINE_MILLIS);
+                    break;
+            }
+            if (PLAN_CACHE_KILOBYTES <= 0) {
+                return engine;
+            }
+            return new CachingPlanner(engine, SHARED_PLAN_CACHE);
+        }
+        /**
+         * Reads the start state and plays the game until its "e" line.
+         * Returns false if the game was broken off by an error, e.g. when the input ended.
+         */
+        public boolean startJourney() {
             try {
                 scanner.nextInt();
                 coordinateXOfGollum = scanner.nextInt();
                 coordinateYOfGollum = scanner.nextInt();
                 map.updateState(scanner);
-                while (true) {
+                while (!gameOver) {
                     executeNextAction();
                 }
+                return true;
             } catch (Exception e) {
+                statistics.report();
                 System.out.println("e -1");
+                return false;
             }
         }
 
@@ -408,17 +1293,38 @@ public class Astar {
 
             if (currentX == target.xCoordinate && currentY == target.yCoordinate) {
                 if (gollumFound) {
+                    statistics.report();
                     System.out.println("e " + moveCount);
-                    System.exit(0);
+                    gameOver = true;
+                    return;
                 }
             }
 
-            // 1. Plan: Ask the pathfinder for the next best action.
-            Action nextAction = solver.findNextAction(new Cell(currentX, currentY),
-                    isRingEquipped, isCoatEquipped, target, map);
-            if (nextAction == null) {
-                System.out.println("e -1");
-                System.exit(0);
+            // 1. Plan: Follow the committed path while it is valid, otherwise ask the pathfinder.
+            Action nextAction;
+            if (!plannedPath.isEmpty() && target.equals(plannedTarget)) {
+                nextAction = plannedPath.poll();
+                statistics.recordReusedStep();
+            } else {
+                long planStart = System.nanoTime();
+                ArrayList<Action> path = solver.findPath(new Cell(currentX, currentY),
+                        isRingEquipped, isCoatEquipped, target, map);
+                statistics.recordPlan(solver, System.nanoTime() - planStart);
+                if (path == null) {
+                    statistics.report();
+                    System.out.println("e -1");
+                    gameOver = true;
+                    return;
+                }
+                plannedPath.clear();
+                if (REUSE_PLANS && solver.isLastActionOptimal()) {
+                    plannedPath.addAll(path);
+                    plannedTarget = target;
+                    nextAction = plannedPath.poll();
+                } else {
+                    // A partial path from a missed deadline is only good for one step.
+                    nextAction = path.get(0);
+                }
             }
 
             // 2. Act: Send the command to the interactor.
@@ -428,6 +1334,7 @@ public class Astar {
                 System.out.println(nextAction.isRingEquipped ? "r" : "rr");
             }
             moveCount++;
+            statistics.recordTurn();
 
             // 3. Update: Synchronize the agent's real state with the state from the plan.
             currentX = nextAction.xCoordinate;
@@ -461,10 +1368,44 @@ public class Astar {
             } else {
                 map.updateState(scanner);
             }
+
+            // 5. Check: Drop the committed path if the new information could change it.
+            if (!plannedPath.isEmpty() && !isPlannedPathStillValid()) {
+                plannedPath.clear();
+            }
+        }
+        /**
+         * Knowledge only grows, so new enemies can only make paths longer or impossible: the rest of
+         * an optimal path stays optimal as long as every step of it is still safe. A newly seen coat
+         * can make a shorter path possible, so it always forces a new search.
+         */
+        private boolean isPlannedPathStillValid() {
+            if (map.lastUpdateFoundCoat()) {
+                return false;
+            }
+            if (!map.lastUpdateAddedHazards()) {
+                return true;
+            }
+            for (Action step : plannedPath) {
+                if (!map.isCellSafe(step.xCoordinate, step.yCoordinate, step.isCoatEquipped, step.isRingEquipped)) {
+                    return false;
+                }
+            }
+            return true;
         }
     }
-    /** The main entry point of the program. */
+    /**
+     * The main entry point of the program. Plays -Dastar.games games (default 1) one after another
+     * on standard input, sharing the planner and its plan cache; each game starts with its own
+     * start state right after the "e" line of the previous one.
+     */
     public static void main(String[] args) {
-        new Journey().startJourney();
+        Scanner scanner = new Scanner(System.in);
+        Planner solver = Journey.createPlanner();
+        for (int game = 0; game < GAMES_PER_PROCESS; game++) {
+            if (!new Journey(scanner, solver).startJourney()) {
+                break;
+            }
+        }
     }
 }
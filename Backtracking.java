@@ -3,6 +3,7 @@ import java.util.HashSet;
 import java.util.Objects;
 import java.util.Scanner;
 import java.util.ArrayDeque;
+import java.util.Arrays;
 
 public class Backtracking {
 
@@ -15,6 +16,9 @@ public class Backtracking {
     static final int[] POSSIBLE_X_DIRECTIONS = {0, 0, 1, -1};
     static final int[] POSSIBLE_Y_DIRECTIONS = {1, -1, 0, 0};
 
+    // Danger zones are precomputed as row bit masks unless -Dbacktracking.scalarZones=true
+    static final boolean USE_ZONE_MASKS = !Boolean.getBoolean("backtracking.scalarZones");
+
     /**
      * Calculates the Manhattan (or "von Neumann") distance between two points.
      * Used for enemy perception zones.
@@ -127,6 +131,9 @@ public class Backtracking {
         private HashSet<Cell> towerLocation = new HashSet<>();
         private HashSet<Cell> pZoneLocation = new HashSet<>();
         private Cell coatLocation = null;
+        /** Danger masks, one per (ring, coat) state: bit y of dangerRows[state][x] is set when
+         cell (x, y) is unsafe. Rebuilt after every map update, so isCellSafe is a single lookup. */
+        private int[][] dangerRows = new int[4][MAX_CELL_INDEX + 1];
         /** Reads new perception data from the interactor and updates enemy locations. */
         public void updateState(Scanner scanner) {
             int count = scanner.nextInt();
@@ -158,6 +165,9 @@ public class Backtracking {
                         break;
                 }
             }
+            if (USE_ZONE_MASKS) {
+                rebuildDangerRows();
+            }
         }
         /** Returns the known location of the coat. */
         public Cell getCoatLocation() {
@@ -240,8 +250,96 @@ public class Backtracking {
             }
             return true;
         }
-        /** The main safety check, combining all individual checks. */
+        /** Index of a (ring, coat) state in the danger masks. */
+        private static int stateIndex(boolean isCoatEquipped, boolean isRingEquipped) {
+            return (isRingEquipped ? 1 : 0) + (isCoatEquipped ? 2 : 0);
+        }
+        /** Bits yFrom..yTo of a row, clipped to the map. */
+        private static int rowSpan(int yFrom, int yTo) {
+            int from = Math.max(yFrom, MIN_CELL_INDEX);
+            int to = Math.min(yTo, MAX_CELL_INDEX);
+            if (from > to) {
+                return 0;
+            }
+            return ((1 << (to - from + 1)) - 1) << from;
+        }
+        /** Marks the given bits of row x as dangerous, rows outside the map are ignored. */
+        private static void markRow(int[] rows, int x, int bits) {
+            if (x >= MIN_CELL_INDEX && x <= MAX_CELL_INDEX) {
+                rows[x] |= bits;
+            }
+        }
+        /** Marks every cell with Moore distance <= radius, one row span at a time. */
+        private static void markMoore(int[] rows, int xCenter, int yCenter, int radius) {
+            int span = rowSpan(yCenter - radius, yCenter + radius);
+            for (int dx = -radius; dx <= radius; dx++) {
+                markRow(rows, xCenter + dx, span);
+            }
+        }
+        /** Marks every cell with von Neumann distance <= radius, the span shrinks away from the center row. */
+        private static void markNeumann(int[] rows, int xCenter, int yCenter, int radius) {
+            for (int dx = -radius; dx <= radius; dx++) {
+                int halfWidth = radius - Math.abs(dx);
+                markRow(rows, xCenter + dx, rowSpan(yCenter - halfWidth, yCenter + halfWidth));
+            }
+        }
+        /** Marks the four "ears": the cells at exactly the given distance along both axes. */
+        private static void markEars(int[] rows, int xCenter, int yCenter, int distance) {
+            markRow(rows, xCenter - distance, rowSpan(yCenter, yCenter));
+            markRow(rows, xCenter + distance, rowSpan(yCenter, yCenter));
+            markRow(rows, xCenter, rowSpan(yCenter - distance, yCenter - distance)
+                    | rowSpan(yCenter + distance, yCenter + distance));
+        }
+        /**
+         * Rebuilds the danger masks of all four (ring, coat) states from the known enemies.
+         * The zones are the same as in isOrcFree, isUrukFree, isTowerFree and isNazgulFree.
+         */
+        private void rebuildDangerRows() {
+            for (int state = 0; state < dangerRows.length; state++) {
+                boolean isRingEquipped = (state & 1) != 0;
+                boolean isCoatEquipped = (state & 2) != 0;
+                int[] rows = dangerRows[state];
+                Arrays.fill(rows, 0);
+                for (Cell orc : orcLocation) {
+                    markNeumann(rows, orc.xCoordinate, orc.yCoordinate, isCoatEquipped || isRingEquipped ? 0 : 1);
+                }
+                for (Cell uruk : urukLocation) {
+                    markNeumann(rows, uruk.xCoordinate, uruk.yCoordinate, isCoatEquipped || isRingEquipped ? 1 : 2);
+                }
+                for (Cell tower : towerLocation) {
+                    markMoore(rows, tower.xCoordinate, tower.yCoordinate, 2);
+                    if (isRingEquipped) {
+                        markEars(rows, tower.xCoordinate, tower.yCoordinate, TOWER_AND_NAZGUL_MAXIMUM_P_ZONE);
+                    }
+                }
+                for (Cell nazgul : nazgulLocation) {
+                    if (isCoatEquipped) {
+                        markMoore(rows, nazgul.xCoordinate, nazgul.yCoordinate, 1);
+                    } else if (isRingEquipped) {
+                        markMoore(rows, nazgul.xCoordinate, nazgul.yCoordinate, 2);
+                        markEars(rows, nazgul.xCoordinate, nazgul.yCoordinate, TOWER_AND_NAZGUL_MAXIMUM_P_ZONE);
+                    } else {
+                        markMoore(rows, nazgul.xCoordinate, nazgul.yCoordinate, 1);
+                        markEars(rows, nazgul.xCoordinate, nazgul.yCoordinate, 2);
+                    }
+                }
+                for (Cell pZone : pZoneLocation) {
+                    markRow(rows, pZone.xCoordinate, rowSpan(pZone.yCoordinate, pZone.yCoordinate));
+                }
+            }
+        }
+        /** The main safety check: a lookup in the danger masks, or all individual checks as a fallback. */
         public boolean isCellSafe(int x, int y, boolean isCoatEquipped, boolean isRingEquipped) {
+            if (x < MIN_CELL_INDEX || x > MAX_CELL_INDEX || y < MIN_CELL_INDEX || y > MAX_CELL_INDEX) {
+                return false;
+            }
+            if (USE_ZONE_MASKS) {
+                return (dangerRows[stateIndex(isCoatEquipped, isRingEquipped)][x] & (1 << y)) == 0;
+            }
+            return isCellSafeByRules(x, y, isCoatEquipped, isRingEquipped);
+        }
+        /** The scalar safety check, combining all individual checks cell by cell. */
+        boolean isCellSafeByRules(int x, int y, boolean isCoatEquipped, boolean isRingEquipped) {
             if (x < MIN_CELL_INDEX || x > MAX_CELL_INDEX || y < MIN_CELL_INDEX || y > MAX_CELL_INDEX) {
                 return false;
             }
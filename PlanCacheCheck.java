@@ -0,0 +1,89 @@
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Scanner;
+
+/**
+ * Checks that the plan cache of Astar carries over from one game to the next. Plays the same
+ * scripted game twice through Astar.Journey with one shared caching planner, the way Astar.main
+ * does with -Dastar.games=2, and expects every planning problem of the second game to be answered
+ * from the cache. The script reports a single orc at the start and nothing after that, so the
+ * solver walks shortest paths and the number of perception lines is known in advance.
+ * Usage: java PlanCacheCheck [cacheKb]
+ */
+public class PlanCacheCheck {
+
+    static final int GOLLUM_X = 4;
+    static final int GOLLUM_Y = 6;
+    static final int MOUNT_X = 10;
+    static final int MOUNT_Y = 3;
+    static final String START_PERCEPTION = "1\n6 6 O\n";
+
+    /** Interactor input of one game: start state, one empty perception per move, the mount line at Gollum. */
+    static String scriptedGame() {
+        int movesToGollum = GOLLUM_X + GOLLUM_Y;
+        int movesToMount = Math.abs(MOUNT_X - GOLLUM_X) + Math.abs(MOUNT_Y - GOLLUM_Y);
+        StringBuilder input = new StringBuilder();
+        input.append("1\n").append(GOLLUM_X).append(' ').append(GOLLUM_Y).append('\n').append(START_PERCEPTION);
+        for (int i = 0; i < movesToGollum; i++) {
+            input.append("0\n");
+        }
+        input.append(MOUNT_X).append(' ').append(MOUNT_Y).append('\n');
+        for (int i = 0; i < movesToMount; i++) {
+            input.append("0\n");
+        }
+        return input.toString();
+    }
+
+    /** Plays one game on the shared input and returns everything the solver sent to the interactor. */
+    static String play(Scanner input, Astar.Planner planner) {
+        PrintStream console = System.out;
+        ByteArrayOutputStream commands = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(commands, true));
+        try {
+            if (!new Astar.Journey(input, planner).startJourney()) {
+                throw new IllegalStateException("The scripted game broke off: " + commands);
+            }
+        } finally {
+            System.setOut(console);
+        }
+        return commands.toString();
+    }
+
+    /** Reads one "key=value" counter from a statistics line. */
+    static long statistic(String line, String key) {
+        for (String field : line.trim().split("\\s+")) {
+            if (field.startsWith(key + "=")) {
+                return Long.parseLong(field.substring(key.length() + 1));
+            }
+        }
+        throw new IllegalStateException("No " + key + " in \"" + line + "\"");
+    }
+
+    public static void main(String[] args) {
+        long cacheKilobytes = args.length > 0 ? Long.parseLong(args[0]) : 256;
+        Astar.CachingPlanner planner = new Astar.CachingPlanner(new Astar.AStarSolver(0),
+                new Astar.PlanCache(cacheKilobytes));
+        String game = scriptedGame();
+        Scanner input = new Scanner(game + game);
+
+        String firstGame = play(input, planner);
+        String afterFirst = planner.getStatistics();
+        String secondGame = play(input, planner);
+        String afterSecond = planner.getStatistics();
+
+        long firstHits = statistic(afterFirst, "cache_hits");
+        long firstMisses = statistic(afterFirst, "cache_misses");
+        long secondHits = statistic(afterSecond, "cache_hits") - firstHits;
+        long secondMisses = statistic(afterSecond, "cache_misses") - firstMisses;
+        System.out.println("game 1: " + firstHits + " cache hits, " + firstMisses + " misses");
+        System.out.println("game 2: " + secondHits + " cache hits, " + secondMisses + " misses");
+        if (!firstGame.equals(secondGame)) {
+            throw new IllegalStateException("The games differ:\n" + firstGame + "---\n" + secondGame);
+        }
+        if (firstMisses == 0 || secondMisses != 0 || secondHits != firstMisses) {
+            throw new IllegalStateException("Expected the second game to be planned from the cache only");
+        }
+        String[] lines = secondGame.trim().split("\n");
+        System.out.println("result: both games ended with \"" + lines[lines.length - 1].trim() + "\", ok");
+    }
+}
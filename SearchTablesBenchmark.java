@@ -0,0 +1,171 @@
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Random;
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Measures the per-state search tables of Astar on a large synthetic board. The game board is
+ * fixed at 13x13, so this benchmark builds its own square board with random walls in each of the
+ * four ring/coat layers and runs the same breadth-first search as BFSSolver over it: one queue
+ * entry object per state, costs and parents in the tables, cleared before every search.
+ * Reports search throughput together with the garbage collections that happened meanwhile.
+ * Usage: java [-Dastar.tables=heap|direct] SearchTablesBenchmark [side] [searches] [wallPercent]
+ */
+public class SearchTablesBenchmark {
+
+    static final int LAYERS = 4;
+    static final int WARMUP_SEARCHES = 1;
+    static final int[] X_DIRECTIONS = {0, 0, 1, -1};
+    static final int[] Y_DIRECTIONS = {1, -1, 0, 0};
+
+    /** A queued search state, allocated per push like BFSSolver's BFSCell. */
+    static class QueuedState {
+        private final int state;
+        QueuedState(int state) {
+            this.state = state;
+        }
+    }
+
+    // Longest single collection pause seen so far, in milliseconds
+    static volatile long longestPauseMillis = 0;
+    // States taken off the queue by all searches so far
+    static long expandedStates = 0;
+
+    /** Records the duration of every collection as it finishes. */
+    static void listenForPauses() {
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) collector).addNotificationListener((notification, handback) -> {
+                if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                    long duration = GarbageCollectionNotificationInfo
+                            .from((CompositeData) notification.getUserData()).getGcInfo().getDuration();
+                    longestPauseMillis = Math.max(longestPauseMillis, duration);
+                }
+            }, null, null);
+        }
+    }
+
+    static long totalCollections() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += collector.getCollectionCount();
+        }
+        return count;
+    }
+
+    static long totalCollectionMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += collector.getCollectionTime();
+        }
+        return millis;
+    }
+
+    /**
+     * Breadth-first search from (0, 0) without ring or coat to the opposite corner. Ring toggles
+     * switch layer bit 0, stepping on the coat cell sets layer bit 1.
+     * Returns the number of steps, or -1 when the corner cannot be reached.
+     */
+    static int search(Astar.SearchTables tables, BitSet walls, int side, int coatCell) {
+        int cells = side * side;
+        int target = cells - 1;
+        tables.clear();
+        ArrayDeque<QueuedState> statesToVisit = new ArrayDeque<>();
+        statesToVisit.add(new QueuedState(0));
+        tables.setCost(0, 0);
+        while (!statesToVisit.isEmpty()) {
+            int state = statesToVisit.poll().state;
+            expandedStates++;
+            int cell = state % cells;
+            int layer = state / cells;
+            if (cell == target) {
+                return tables.getCost(state);
+            }
+            int x = cell % side;
+            int y = cell / side;
+            for (int i = 0; i <= X_DIRECTIONS.length; i++) {
+                int nextCell = cell;
+                int nextLayer = layer ^ 1;
+                if (i < X_DIRECTIONS.length) {
+                    int nextX = x + X_DIRECTIONS[i];
+                    int nextY = y + Y_DIRECTIONS[i];
+                    if (nextX < 0 || nextX >= side || nextY < 0 || nextY >= side) {
+                        continue;
+                    }
+                    nextCell = nextY * side + nextX;
+                    nextLayer = nextCell == coatCell ? layer | 2 : layer;
+                }
+                int nextState = nextLayer * cells + nextCell;
+                if (walls.get(nextState) || tables.getCost(nextState) != Astar.INFINITE_DISTANCE) {
+                    continue;
+                }
+                tables.setCost(nextState, tables.getCost(state) + 1);
+                tables.setParent(nextState, state);
+                statesToVisit.add(new QueuedState(nextState));
+            }
+        }
+        return -1;
+    }
+
+    public static void main(String[] args) {
+        int side = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+        int searches = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int wallPercent = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        if ((long) LAYERS * side * side > Integer.MAX_VALUE / Integer.BYTES) {
+            throw new IllegalArgumentException("Board side " + side + " is too large for int-indexed tables");
+        }
+        int cells = side * side;
+        int states = LAYERS * cells;
+        BitSet walls = new BitSet(states);
+        Random random = new Random(42);
+        for (int state = 0; state < states; state++) {
+            int cell = state % cells;
+            if (cell != 0 && cell != cells - 1 && random.nextInt(100) < wallPercent) {
+                walls.set(state);
+            }
+        }
+        int coatCell = cells / 2 + side / 2;
+        for (int layer = 0; layer < LAYERS; layer++) {
+            walls.clear(layer * cells + coatCell);
+        }
+
+        long allocationStart = System.nanoTime();
+        Astar.SearchTables tables = Astar.createSearchTables(states);
+        long allocationNanos = System.nanoTime() - allocationStart;
+        System.out.println("backend:    " + Astar.SEARCH_TABLES + " (" + tables.getClass().getSimpleName() + "), "
+                + side + "x" + side + " board, " + states + " states, "
+                + 2L * states * Integer.BYTES / (1024 * 1024) + " MB of tables");
+        System.out.println("allocation: " + allocationNanos / 1000000 + " ms");
+
+        int steps = 0;
+        for (int i = 0; i < WARMUP_SEARCHES; i++) {
+            steps = search(tables, walls, side, coatCell);
+        }
+        long clearStart = System.nanoTime();
+        tables.clear();
+        long clearNanos = System.nanoTime() - clearStart;
+
+        listenForPauses();
+        long collectionsBefore = totalCollections();
+        long collectionMillisBefore = totalCollectionMillis();
+        expandedStates = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < searches; i++) {
+            steps = search(tables, walls, side, coatCell);
+        }
+        long searchNanos = System.nanoTime() - start;
+        long collections = totalCollections() - collectionsBefore;
+        long collectionMillis = totalCollectionMillis() - collectionMillisBefore;
+
+        System.out.println("clear:      " + clearNanos / 1000000 + " ms");
+        System.out.println("search:     " + searchNanos / 1000000 / searches + " ms per search, "
+                + expandedStates * 1000000 / Math.max(1, searchNanos) + " expanded states per ms, "
+                + "path length " + steps);
+        System.out.println("gc:         " + collections + " collections, " + collectionMillis + " ms in total, "
+                + "longest pause " + longestPauseMillis + " ms");
+    }
+}
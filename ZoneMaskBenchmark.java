@@ -0,0 +1,120 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+import java.util.Scanner;
+
+/**
+ * Compares the row bit mask danger zones of Astar.MapState with the scalar cell by cell rules.
+ * First checks that both give the same answer for every cell and every ring/coat state on many
+ * random maps, then times a full-board evaluation with each of them.
+ * Usage: java ZoneMaskBenchmark [maps] [enemiesPerMap]
+ */
+public class ZoneMaskBenchmark {
+
+    static final int BOARD_SIZE = Astar.MAX_CELL_INDEX + 1;
+    static final String ENEMY_KINDS = "OUNWP";
+    static final int WARMUP_ROUNDS = 3;
+
+    /** Builds a map with the given number of objects on distinct random cells. */
+    static Astar.MapState randomMap(Random random, int enemies) {
+        ArrayList<Integer> cells = new ArrayList<>();
+        for (int i = 0; i < BOARD_SIZE * BOARD_SIZE; i++) {
+            cells.add(i);
+        }
+        Collections.shuffle(cells, random);
+        StringBuilder perception = new StringBuilder();
+        int count = Math.min(enemies, cells.size());
+        perception.append(count).append('\n');
+        for (int i = 0; i < count; i++) {
+            int cell = cells.get(i);
+            char kind = ENEMY_KINDS.charAt(random.nextInt(ENEMY_KINDS.length()));
+            perception.append(cell / BOARD_SIZE).append(' ').append(cell % BOARD_SIZE).append(' ').append(kind).append('\n');
+        }
+        Astar.MapState map = new Astar.MapState();
+        map.updateState(new Scanner(perception.toString()));
+        return map;
+    }
+
+    /** Counts safe cells over the whole board and all four states using the bit masks. */
+    static int countSafeWithMasks(Astar.MapState map) {
+        map.rebuildDangerRows();
+        int safe = 0;
+        for (int state = 0; state < 4; state++) {
+            for (int x = 0; x < BOARD_SIZE; x++) {
+                for (int y = 0; y < BOARD_SIZE; y++) {
+                    if (map.isCellSafe(x, y, (state & 2) != 0, (state & 1) != 0)) {
+                        safe++;
+                    }
+                }
+            }
+        }
+        return safe;
+    }
+
+    /** Counts safe cells over the whole board and all four states using the scalar rules. */
+    static int countSafeByRules(Astar.MapState map) {
+        int safe = 0;
+        for (int state = 0; state < 4; state++) {
+            for (int x = 0; x < BOARD_SIZE; x++) {
+                for (int y = 0; y < BOARD_SIZE; y++) {
+                    if (map.isCellSafeByRules(x, y, (state & 2) != 0, (state & 1) != 0)) {
+                        safe++;
+                    }
+                }
+            }
+        }
+        return safe;
+    }
+
+    public static void main(String[] args) {
+        if (!Astar.USE_ZONE_MASKS) {
+            throw new IllegalStateException("Run without -Dastar.scalarZones=true");
+        }
+        int maps = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int enemies = args.length > 1 ? Integer.parseInt(args[1]) : 40;
+        Random random = new Random(42);
+        Astar.MapState[] suite = new Astar.MapState[maps];
+        for (int i = 0; i < maps; i++) {
+            // Vary the density so that both sparse and crowded maps are checked.
+            suite[i] = randomMap(random, 1 + random.nextInt(enemies));
+        }
+
+        // 1. Equivalence: every cell, every ring/coat combination, every map.
+        for (int i = 0; i < maps; i++) {
+            for (int state = 0; state < 4; state++) {
+                for (int x = -1; x <= BOARD_SIZE; x++) {
+                    for (int y = -1; y <= BOARD_SIZE; y++) {
+                        boolean isCoatEquipped = (state & 2) != 0;
+                        boolean isRingEquipped = (state & 1) != 0;
+                        if (suite[i].isCellSafe(x, y, isCoatEquipped, isRingEquipped)
+                                != suite[i].isCellSafeByRules(x, y, isCoatEquipped, isRingEquipped)) {
+                            throw new IllegalStateException("Mismatch on map " + i + " at (" + x + ", " + y
+                                    + ") ring=" + isRingEquipped + " coat=" + isCoatEquipped);
+                        }
+                    }
+                }
+            }
+        }
+        System.out.println("equivalence: ok (" + maps + " maps, up to " + enemies + " objects each)");
+
+        // 2. Timing: rebuild + full-board lookups against full-board scalar checks.
+        long checksum = 0;
+        long masksNanos = 0;
+        long rulesNanos = 0;
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (Astar.MapState map : suite) {
+                checksum += countSafeWithMasks(map);
+            }
+            masksNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (Astar.MapState map : suite) {
+                checksum -= countSafeByRules(map);
+            }
+            rulesNanos = System.nanoTime() - start;
+        }
+        System.out.println("row masks: " + masksNanos / 1000 / maps + " us per map update");
+        System.out.println("scalar:    " + rulesNanos / 1000 / maps + " us per map update");
+        System.out.println("checksum:  " + checksum + " (must be 0)");
+    }
+}
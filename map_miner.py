@@ -0,0 +1,251 @@
+﻿from __future__ import annotations
+
+import json
+import random
+import time
+from dataclasses import dataclass
+from pathlib import Path
+from typing import Dict, List, Sequence, Tuple
+
+import tester
+from tester import SIZE, Enemy, MapDefinition, TestCase
+
+# Enemy composition of the generated bundles: kind -> (min count, max count), in bundle order
+ENEMY_LIMITS: Dict[str, Tuple[int, int]] = {"W": (1, 1), "U": (1, 1), "N": (0, 1), "O": (1, 2)}
+START = (0, 0)
+# Fitness metrics: keys of the solver's "stats ..." line (needs -Dastar.stats=true, added automatically)
+METRICS = ["expanded", "pushes", "planner_calls", "planning_ms", "max_turn_ms"]
+# Fitness of a game that ended without a stats line (crash, timeout)
+NO_STATS_FITNESS = -1.0
+
+
+@dataclass
+class Candidate:
+    map_def: MapDefinition
+    fitness: float = NO_STATS_FITNESS
+    reason: str = ""
+
+    @property
+    def key(self) -> str:
+        return json.dumps(tester.serialize_map(self.map_def), sort_keys=True)
+
+
+def random_cell(rng: random.Random) -> Tuple[int, int]:
+    return (rng.randrange(SIZE), rng.randrange(SIZE))
+
+
+def make_map(
+    g_pos: Tuple[int, int], m_pos: Tuple[int, int], c_pos: Tuple[int, int], enemies: Sequence[Enemy]
+) -> MapDefinition:
+    """Builds a map with the enemies in bundle order (W, U, N, O)."""
+    order = list(ENEMY_LIMITS)
+    ordered = sorted(enemies, key=lambda e: (order.index(e.kind), e.x, e.y))
+    return MapDefinition(g_pos=g_pos, m_pos=m_pos, c_pos=c_pos, enemies=tuple(ordered))
+
+
+def is_valid(map_def: MapDefinition, solvable_only: bool) -> bool:
+    """Same rules as the shipped bundles: enemy counts, distinct cells, safe start and items."""
+    for kind, (low, high) in ENEMY_LIMITS.items():
+        count = sum(1 for e in map_def.enemies if e.kind == kind)
+        if not low <= count <= high:
+            return False
+    cells = [START, map_def.g_pos, map_def.m_pos, map_def.c_pos] + [e.pos for e in map_def.enemies]
+    if len(set(cells)) != len(cells) or not all(tester.inside(x, y) for x, y in cells):
+        return False
+    hazard = tester.compute_hazard_cache(map_def)[(False, False)]
+    if any(pos in hazard for pos in (START, map_def.g_pos, map_def.m_pos, map_def.c_pos)):
+        return False
+    if solvable_only and tester.compute_shortest_paths(map_def)["dist_to_m"] is None:
+        return False
+    return True
+
+
+def random_map(rng: random.Random, solvable_only: bool) -> MapDefinition:
+    while True:
+        enemies = []
+        for kind, (low, high) in ENEMY_LIMITS.items():
+            for _ in range(rng.randint(low, high)):
+                x, y = random_cell(rng)
+                enemies.append(Enemy(kind=kind, x=x, y=y))
+        map_def = make_map(random_cell(rng), random_cell(rng), random_cell(rng), enemies)
+        if is_valid(map_def, solvable_only):
+            return map_def
+
+
+def mutate(map_def: MapDefinition, rng: random.Random) -> MapDefinition:
+    """Moves one object a few cells (sometimes anywhere), or adds/removes an optional enemy."""
+    items = {"g": map_def.g_pos, "m": map_def.m_pos, "c": map_def.c_pos}
+    enemies = list(map_def.enemies)
+    if rng.random() < 0.15:
+        kind = rng.choice([k for k, (low, high) in ENEMY_LIMITS.items() if low < high])
+        same_kind = [e for e in enemies if e.kind == kind]
+        low, high = ENEMY_LIMITS[kind]
+        if len(same_kind) < high and (len(same_kind) == low or rng.random() < 0.5):
+            x, y = random_cell(rng)
+            enemies.append(Enemy(kind=kind, x=x, y=y))
+        else:
+            enemies.remove(rng.choice(same_kind))
+        return make_map(items["g"], items["m"], items["c"], enemies)
+
+    index = rng.randrange(len(items) + len(enemies))
+    if index < len(items):
+        name = list(items)[index]
+        old = items[name]
+    else:
+        old = enemies[index - len(items)].pos
+    if rng.random() < 0.25:
+        new = random_cell(rng)
+    else:
+        new = (old[0] + rng.randint(-2, 2), old[1] + rng.randint(-2, 2))
+    if index < len(items):
+        items[name] = new
+    else:
+        enemy = enemies[index - len(items)]
+        enemies[index - len(items)] = Enemy(kind=enemy.kind, x=new[0], y=new[1])
+    return make_map(items["g"], items["m"], items["c"], enemies)
+
+
+def crossover(first: MapDefinition, second: MapDefinition, rng: random.Random) -> MapDefinition:
+    """Takes G, M, C and every enemy kind as a whole from one parent or the other."""
+    parents = (first, second)
+    enemies: List[Enemy] = []
+    for kind in ENEMY_LIMITS:
+        enemies.extend(e for e in rng.choice(parents).enemies if e.kind == kind)
+    return make_map(rng.choice(parents).g_pos, rng.choice(parents).m_pos, rng.choice(parents).c_pos, enemies)
+
+
+def make_child(
+    population: Sequence[Candidate], rng: random.Random, solvable_only: bool, crossover_rate: float
+) -> MapDefinition:
+    """Tournament selection, crossover and mutation, retried until the child is a valid map."""
+
+    def tournament() -> Candidate:
+        return max(rng.sample(list(population), min(3, len(population))), key=lambda c: c.fitness)
+
+    while True:
+        child = tournament().map_def
+        if rng.random() < crossover_rate:
+            child = crossover(child, tournament().map_def, rng)
+        child = mutate(child, rng)
+        if is_valid(child, solvable_only):
+            return child
+
+
+def evaluate(candidates: Sequence[Candidate], variant: int, metric: str, workers: int) -> None:
+    """Plays every candidate once with the A* solver and stores the chosen stats value as fitness."""
+    tests = [TestCase(variant=variant, map=tester.serialize_map(c.map_def)) for c in candidates]
+    results = tester.run_cases(tests, "astar", workers)
+    for candidate, result in zip(candidates, results):
+        candidate.reason = result.reason
+        value = result.solver_stats.get(metric)
+        candidate.fitness = float(value) if value is not None else NO_STATS_FITNESS
+
+
+def mine(
+    variant: int,
+    metric: str,
+    population_size: int,
+    generations: int,
+    workers: int,
+    keep: int,
+    seed: int,
+    solvable_only: bool,
+    crossover_rate: float,
+) -> List[Candidate]:
+    """Genetic search for the maps with the highest metric; returns the best distinct maps seen.
+
+    Parents and children compete for the next generation ((mu + lambda) selection), so the best
+    map is never lost. A population of 1 without crossover is plain hill climbing.
+    """
+    rng = random.Random(seed)
+    archive: Dict[str, Candidate] = {}
+
+    def play(candidates: List[Candidate]) -> None:
+        evaluate(candidates, variant, metric, workers)
+        for candidate in candidates:
+            if candidate.fitness == NO_STATS_FITNESS:
+                print(f"  no stats ({candidate.reason}): {candidate.key}")
+            best = archive.get(candidate.key)
+            if best is None or candidate.fitness > best.fitness:
+                archive[candidate.key] = candidate
+
+    population = [Candidate(random_map(rng, solvable_only)) for _ in range(population_size)]
+    play(population)
+    for generation in range(generations + 1):
+        fitness = [c.fitness for c in population]
+        print(
+            f"generation {generation}: best {metric}={max(fitness):g} "
+            f"mean={sum(fitness) / len(fitness):g} distinct maps={len(archive)}"
+        )
+        if generation == generations:
+            break
+        children = [
+            Candidate(make_child(population, rng, solvable_only, crossover_rate)) for _ in range(population_size)
+        ]
+        play(children)
+        population = sorted(population + children, key=lambda c: c.fitness, reverse=True)[:population_size]
+
+    return sorted(archive.values(), key=lambda c: c.fitness, reverse=True)[:keep]
+
+
+def write_bundle(path: Path, candidates: Sequence[Candidate], variant: int) -> None:
+    """Writes the maps as a JSONL bundle that tester.py --suite-in reads directly."""
+    with path.open("w", encoding="utf-8") as f:
+        for candidate in candidates:
+            f.write(json.dumps({"variant": variant, "map": tester.serialize_map(candidate.map_def)}) + "\n")
+
+
+def main() -> None:
+    import argparse
+
+    parser = argparse.ArgumentParser(description="Search for maps that make the A* solver work hardest")
+    parser.add_argument("--variant", type=int, choices=[1, 2], default=1, help="Perception variant (default 1)")
+    parser.add_argument("--metric", choices=METRICS, default="expanded", help="Stats value to maximize (default expanded)")
+    parser.add_argument("--population", type=int, default=16, help="Maps per generation (default 16)")
+    parser.add_argument("--generations", type=int, default=20, help="Number of generations (default 20)")
+    parser.add_argument(
+        "--workers", type=int, default=1, help="Number of worker processes playing games in parallel (default 1)"
+    )
+    parser.add_argument("--keep", type=int, default=50, help="How many of the hardest distinct maps to write (default 50)")
+    parser.add_argument("--seed", type=int, default=0, help="Random seed of the search (default 0)")
+    parser.add_argument(
+        "--crossover", type=float, default=0.5, help="Probability that a child has two parents (default 0.5)"
+    )
+    parser.add_argument("--solvable-only", dest="solvable_only", action="store_true", help="Reject maps where M cannot be reached")
+    parser.add_argument("--out", type=str, default=None, help="Output bundle (default hard_maps_v<variant>.jsonl)")
+    parser.add_argument(
+        "--java-opt",
+        dest="java_opts",
+        action="append",
+        default=[],
+        help="Extra JVM option for the solver, may be repeated (e.g. --java-opt=-Dastar.mode=bfs)",
+    )
+
+    args = parser.parse_args()
+    tester.JAVA_OPTS.extend(["-Dastar.stats=true"] + args.java_opts)
+    out_path = Path(args.out or f"hard_maps_v{args.variant}.jsonl")
+
+    start_time = time.perf_counter()
+    hardest = mine(
+        args.variant,
+        args.metric,
+        args.population,
+        args.generations,
+        args.workers,
+        args.keep,
+        args.seed,
+        args.solvable_only,
+        args.crossover,
+    )
+    write_bundle(out_path, hardest, args.variant)
+    print(f"Mined {len(hardest)} maps in {time.perf_counter() - start_time:.1f}s")
+    print(f"  {args.metric}: {hardest[0].fitness:g} (hardest) .. {hardest[-1].fitness:g}")
+    reasons: Dict[str, int] = {}
+    for candidate in hardest:
+        reasons[candidate.reason] = reasons.get(candidate.reason, 0) + 1
+    print(f"  game results: {reasons}")
+    print(f"Bundle file: {out_path.resolve()}")
+
+
+if __name__ == "__main__":
+    main()
@@ -1,12 +1,14 @@
 ﻿from __future__ import annotations
 
 import json
+import math
 import random
 import statistics
 import subprocess
 import threading
 import time
 from collections import deque
+from concurrent.futures import ProcessPoolExecutor
 from dataclasses import dataclass, field
 from pathlib import Path
 from queue import Empty, Queue
@@ -40,6 +42,9 @@ else:
 COMMAND_TIMEOUT_SEC = 12.0  # max silence between commands
 PROCESS_TIMEOUT_SEC = 120   # max total run time per simulation
 
+# Extra JVM options for the solver process (e.g. -Dastar.deadlineMs=50 -Dastar.stats=true)
+JAVA_OPTS: List[str] = []
+
 
 @dataclass(frozen=True)
 class Enemy:
@@ -76,6 +81,14 @@ class RunResult:
     stderr: str = ""
     log: List[str] = field(default_factory=list)
 
+    @property
+    def solver_stats(self) -> Dict[str, str]:
+        """Key/value pairs from the solver's "stats ..." stderr line (empty if it printed none)."""
+        for line in reversed(self.stderr.splitlines()):
+            if line.startswith("stats "):
+                return dict(item.split("=", 1) for item in line.split()[1:] if "=" in item)
+        return {}
+
 
 def inside(x: int, y: int) -> bool:
     return 0 <= x < SIZE and 0 <= y < SIZE
@@ -290,7 +303,7 @@ def spawn_algorithm(algo: str) -> subprocess.Popen:
         main_class = "Backtracking"
     else:
         raise ValueError(f"Unknown algorithm {algo}")
-    command = [JAVA_BIN, "-cp", classpath, main_class]
+    command = [JAVA_BIN, *JAVA_OPTS, "-cp", classpath, main_class]
     return subprocess.Popen(
         command,
         cwd=ROOT,
@@ -694,6 +707,14 @@ def run_single_simulation(
                         log=log,
                     )
                 value = int(tokens[1])
+                # The game ends with "e": take its time before waiting for JVM shutdown below
+                runtime_sec = time.perf_counter() - start_time
+                # The solver exits right after "e"; let it finish so its stderr (stats) is complete
+                try:
+                    proc.wait(timeout=1.0)
+                    stderr_thread.join(timeout=0.5)
+                except Exception:
+                    pass
                 claimed_unsolvable = value == -1
                 was_solvable = map_stats["dist_to_m"] is not None
                 ended_on_goal = position == map_def.m_pos and g_found
@@ -725,7 +746,7 @@ def run_single_simulation(
                     moves=moves,
                     toggles=toggles,
                     reported_length=value if value >= 0 else None,
-                    runtime_sec=time.perf_counter() - start_time,
+                    runtime_sec=runtime_sec,
                     claimed_unsolvable=claimed_unsolvable,
                     was_solvable=was_solvable,
                     stderr=consume_stderr(),
@@ -851,13 +872,138 @@ def run_case(case: TestCase, algo: str) -> RunResult:
     )
 
 
-def run_imported_tests(algo: str, in_path: Path, out_dir: Path) -> Dict[str, object]:
+def _init_worker(java_bin: Path, java_opts: List[str], astar_cp: str, backtrack_cp: str) -> None:
+    """Runs once in every pool worker: take over the solver settings of the parent process."""
+    global JAVA_BIN, ASTAR_CLASSPATH, BACKTRACK_CLASSPATH
+    JAVA_BIN = java_bin
+    JAVA_OPTS[:] = java_opts
+    ASTAR_CLASSPATH = astar_cp
+    BACKTRACK_CLASSPATH = backtrack_cp
+
+
+def _run_case_job(job: Tuple[TestCase, str]) -> RunResult:
+    case, algo = job
+    return run_case(case, algo)
+
+
+def run_cases(tests: Sequence[TestCase], algo: str, workers: int) -> List[RunResult]:
+    """Run every test, in order or spread over a pool of worker processes.
+
+    Each game already gets its own solver JVM, so workers share nothing but the results.
+    Results are returned in the order of the tests either way.
+    """
+    if workers <= 1:
+        return [run_case(case, algo) for case in tests]
+    with ProcessPoolExecutor(
+        max_workers=workers,
+        initializer=_init_worker,
+        initargs=(JAVA_BIN, list(JAVA_OPTS), ASTAR_CLASSPATH, BACKTRACK_CLASSPATH),
+    ) as pool:
+        return list(pool.map(_run_case_job, [(case, algo) for case in tests]))
+
+
+def percentile(values: Sequence[float], pct: float) -> Optional[float]:
+    """Nearest-rank percentile (pct in 0..100), None for no values."""
+    if not values:
+        return None
+    ordered = sorted(values)
+    rank = max(1, math.ceil(pct / 100 * len(ordered)))
+    return ordered[rank - 1]
+
+
+def distribution(values: Sequence[float]) -> Dict[str, Optional[float]]:
+    return {
+        "p50": percentile(values, 50),
+        "p95": percentile(values, 95),
+        "p99": percentile(values, 99),
+        "max": max(values) if values else None,
+    }
+
+
+def build_report(
+    algo: str,
+    in_path: Path,
+    tests: Sequence[TestCase],
+    results: Sequence[RunResult],
+    workers: int,
+    wall_time_sec: float,
+) -> Dict[str, object]:
+    """Machine-readable report of one suite run; a saved report can serve as a baseline."""
+    return {
+        "algo": algo,
+        "suite": str(in_path),
+        "workers": workers,
+        "wall_time_sec": wall_time_sec,
+        "total": len(results),
+        "wins": sum(1 for r in results if r.reported_length is not None),
+        "losses": sum(1 for r in results if r.reported_length is None),
+        "runtime_sec": distribution([r.runtime_sec for r in results]),
+        "moves": distribution([r.moves for r in results]),
+        "loss_cases": [
+            {"index": idx, "reason": r.reason, "variant": case.variant, "map": case.map}
+            for idx, (case, r) in enumerate(zip(tests, results))
+            if r.reported_length is None
+        ],
+    }
+
+
+def baseline_workers_mismatch(baseline: Dict[str, Any], workers: int) -> Optional[str]:
+    """Per-game runtimes grow with the number of games competing for CPU, so only runs made
+    with the same --workers can be compared. Returns the reason if they cannot, else None."""
+    if baseline.get("workers") == workers:
+        return None
+    return (
+        f"Baseline was run with --workers {baseline.get('workers')}, this run uses --workers {workers}; "
+        f"runtimes are only comparable with the same number of workers"
+    )
+
+
+def compare_with_baseline(
+    report: Dict[str, Any], baseline: Dict[str, Any], max_regression: float
+) -> List[str]:
+    """List every runtime percentile that got slower than the baseline by more than max_regression."""
+    mismatch = baseline_workers_mismatch(baseline, report["workers"])
+    if mismatch is not None:
+        raise ValueError(mismatch)
+    regressions: List[str] = []
+    for key in ("p50", "p95", "p99"):
+        base = baseline.get("runtime_sec", {}).get(key)
+        current = report["runtime_sec"][key]
+        if base is None or current is None:
+            continue
+        if current > base * (1.0 + max_regression):
+            regressions.append(
+                f"runtime {key}: {current:.4f}s vs baseline {base:.4f}s (+{(current / base - 1.0) * 100:.1f}%)"
+            )
+    return regressions
+
+
+def run_imported_tests(
+    algo: str,
+    in_path: Path,
+    out_dir: Path,
+    workers: int = 1,
+    baseline_path: Optional[Path] = None,
+    max_regression: float = 0.2,
+) -> Dict[str, object]:
     tests = read_tests_file(in_path)
+    report_path = out_dir / f"{algo}_import_report.json"
+    baseline: Optional[Dict[str, Any]] = None
+    if baseline_path is not None:
+        # Check before playing the suite, so a run that cannot be compared fails right away
+        if baseline_path.resolve() == report_path.resolve():
+            raise SystemExit(
+                f"Baseline {baseline_path} is the report this run writes and would be overwritten by it; "
+                "copy it elsewhere first and pass the copy as --baseline"
+            )
+        baseline = json.loads(baseline_path.read_text(encoding="utf-8"))
+        mismatch = baseline_workers_mismatch(baseline, workers)
+        if mismatch is not None:
+            raise SystemExit(mismatch)
     out_dir.mkdir(parents=True, exist_ok=True)
-    results: List[RunResult] = []
-    for idx, case in enumerate(tests):
-        res = run_case(case, algo)
-        results.append(res)
+    start_time = time.perf_counter()
+    results = run_cases(tests, algo, workers)
+    wall_time_sec = time.perf_counter() - start_time
 
     runtimes = [r.runtime_sec for r in results]
     wins = sum(1 for r in results if r.reported_length is not None)
@@ -878,8 +1024,36 @@ def run_imported_tests(algo: str, in_path: Path, out_dir: Path) -> Dict[str, obj
         "runtime_mode": safe_mode(runtimes),
         "runtime_median": statistics.median(runtimes) if runtimes else None,
         "runtime_std": statistics.pstdev(runtimes) if len(runtimes) > 1 else 0.0,
+        "runtime_p95": percentile(runtimes, 95),
+        "runtime_p99": percentile(runtimes, 99),
+        "runtime_max": max(runtimes) if runtimes else None,
+        "workers": workers,
+        "wall_time_sec": wall_time_sec,
     }
 
+    # Planner counters are only available when the solver runs with -Dastar.stats=true
+    solver_stats = [r.solver_stats for r in results if r.solver_stats]
+    if solver_stats:
+        summary["planner_calls"] = sum(int(s.get("planner_calls", 0)) for s in solver_stats)
+        summary["reused_steps"] = sum(int(s.get("reused_steps", 0)) for s in solver_stats)
+        summary["deadline_misses"] = sum(int(s.get("deadline_misses", 0)) for s in solver_stats)
+        summary["non_optimal_games"] = sum(1 for s in solver_stats if s.get("optimal") == "false")
+        summary["max_turn_ms"] = max(float(s.get("max_turn_ms", 0.0)) for s in solver_stats)
+        summary["cache_hits"] = sum(int(s.get("cache_hits", 0)) for s in solver_stats)
+        summary["cache_misses"] = sum(int(s.get("cache_misses", 0)) for s in solver_stats)
+        # Portfolio mode: which engine answered first, how long its winning and losing turns took,
+        # and by how much it beat the others at least
+        portfolio_keys = ("wins_", "win_ms_", "loss_ms_", "margin_ms_")
+        for key in sorted({k for s in solver_stats for k in s if k.startswith(portfolio_keys)}):
+            cast = int if key.startswith("wins_") else float
+            summary[key] = sum(cast(s.get(key, 0)) for s in solver_stats)
+
+    report = build_report(algo, in_path, tests, results, workers, wall_time_sec)
+    with report_path.open("w", encoding="utf-8") as f:
+        json.dump(report, f, indent=2)
+    if baseline is not None:
+        summary["regressions"] = compare_with_baseline(report, baseline, max_regression)
+
     with (out_dir / f"{algo}_import_summary.txt").open("w", encoding="utf-8") as f:
         for k, v in summary.items():
             f.write(f"{k}: {v}\n")
@@ -1020,16 +1194,52 @@ def main() -> None:
         default=str((ROOT / "analysis" / "imported").resolve()),
         help="Where to write summaries/logs for imported tests",
     )
+    parser.add_argument(
+        "--workers",
+        type=int,
+        default=1,
+        help="Number of worker processes running games in parallel (default 1 = sequential)",
+    )
+    parser.add_argument(
+        "--baseline",
+        type=str,
+        default=None,
+        help="Report JSON of an earlier run; fail if a runtime percentile regressed against it",
+    )
+    parser.add_argument(
+        "--max-regression",
+        dest="max_regression",
+        type=float,
+        default=0.2,
+        help="Allowed relative slowdown of runtime p50/p95/p99 against the baseline (default 0.2 = 20%%)",
+    )
+    parser.add_argument(
+        "--java-opt",
+        dest="java_opts",
+        action="append",
+        default=[],
+        help="Extra JVM option for the solver, may be repeated (e.g. --java-opt=-Dastar.deadlineMs=50)",
+    )
 
     args = parser.parse_args()
+    JAVA_OPTS.extend(args.java_opts)
 
     in_path = Path(args.suite_in)
     out_dir = Path(args.outdir)
-    summary = run_imported_tests(args.algo, in_path, out_dir)
+    baseline_path = Path(args.baseline) if args.baseline else None
+    summary = run_imported_tests(
+        args.algo, in_path, out_dir, args.workers, baseline_path, args.max_regression
+    )
     print("Imported tests summary:")
     for k, v in summary.items():
         print(f"  {k}: {v}")
     print(f"Summary file: {(out_dir / (args.algo + '_import_summary.txt')).resolve()}")
+    print(f"Report file: {(out_dir / (args.algo + '_import_report.json')).resolve()}")
+    if summary.get("regressions"):
+        print("Performance regression against baseline:")
+        for line in summary["regressions"]:
+            print(f"  {line}")
+        raise SystemExit(1)
 
 
 if __name__ == "__main__":